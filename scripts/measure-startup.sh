@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+# Measures startup of the packaged app over several runs:
+#   health = ms from launch until GET /health answers (HTTP + JDBC routes up)
+#   ready  = ms from launch until GET /ready answers 200 (SessionFactory built)
+#
+# Build first:  mvn -B -Pappcds package
+# Usage:        scripts/measure-startup.sh [runs]
+# Env:          STARTUP=lazy|eager (default lazy), CDS=1 to use target/app.jsa,
+#               JAVA_OPTS for extra flags (e.g. -Dorm.validateSchema=false)
+set -euo pipefail
+
+RUNS=${1:-5}
+STARTUP=${STARTUP:-lazy}
+JAR=target/jdbc-demo-1.0.0.jar
+JSA=target/app.jsa
+URL=http://localhost:8080
+TIMEOUT_MS=60000
+
+[ -f "$JAR" ] || { echo "Missing $JAR, run: mvn -B -Pappcds package" >&2; exit 1; }
+
+OPTS="-Dapp.startup=$STARTUP ${JAVA_OPTS:-}"
+if [ "${CDS:-0}" = "1" ]; then
+    [ -f "$JSA" ] || { echo "Missing $JSA, run: mvn -B -Pappcds package" >&2; exit 1; }
+    OPTS="-XX:SharedArchiveFile=$JSA $OPTS"
+fi
+
+now_ms() { echo $(( $(date +%s%N) / 1000000 )); }
+
+# Polls $1 until it answers 2xx; prints elapsed ms since $2, or "timeout"
+wait_for() {
+    local url=$1 start=$2
+    while ! curl -fs -o /dev/null "$url"; do
+        if [ $(( $(now_ms) - start )) -gt $TIMEOUT_MS ]; then echo "timeout"; return; fi
+        sleep 0.01
+    done
+    echo $(( $(now_ms) - start ))
+}
+
+median() { sort -n | awk '{ a[NR] = $1 } END { if (NR) print a[int((NR + 1) / 2)]; else print "n/a" }'; }
+
+echo "startup=$STARTUP cds=${CDS:-0} runs=$RUNS opts: $OPTS"
+HEALTH=()
+READY=()
+for i in $(seq 1 "$RUNS"); do
+    start=$(now_ms)
+    # shellcheck disable=SC2086
+    java $OPTS -jar "$JAR" > /dev/null 2>&1 &
+    pid=$!
+
+    h=$(wait_for "$URL/health" "$start")
+    r=$(wait_for "$URL/ready" "$start")
+
+    kill "$pid" 2> /dev/null || true
+    wait "$pid" 2> /dev/null || true
+
+    echo "run $i: health=${h}ms ready=${r}ms"
+    [ "$h" != "timeout" ] && HEALTH+=("$h")
+    [ "$r" != "timeout" ] && READY+=("$r")
+done
+
+echo "median: health=$(printf '%s\n' "${HEALTH[@]:-}" | grep . | median)ms" \
+     "ready=$(printf '%s\n' "${READY[@]:-}" | grep . | median)ms"
@@ -1,20 +1,34 @@
 package demo.jdbc;
 
 import demo.jdbc.dao.HibernateStudentDao;
+import demo.jdbc.dao.IdempotencyDao;
 import demo.jdbc.dao.StudentDao;
+import demo.jdbc.dao.StudentStats;
+import demo.jdbc.dao.StudentUpdateQueue;
+import demo.jdbc.db.DB;
 import demo.jdbc.model.Student;
 import demo.jdbc.model.orm.StudentEntity;
 import demo.jdbc.orm.HibernateUtil;
+import demo.jdbc.web.Idempotency;
 import demo.jdbc.web.JsonUtil;
 import demo.jdbc.web.dto.StudentCreateRequest;
 import demo.jdbc.web.dto.StudentUpdateRequest;
 
 import static spark.Spark.*;
 
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.*;
 
 public class App {
     public static void main(String[] args) {
+        // -Dapp.startup=lazy: serve HTTP + JDBC routes first, build the ORM in the background
+        String startup = System.getProperty("app.startup", "eager");
+        if (startup.equalsIgnoreCase("lazy")) HibernateUtil.initAsync();
+        else HibernateUtil.init();
+
         port(8080);
 
         // Register shutdown hook (when app stop) for closing SessionFactory
@@ -30,7 +44,8 @@ public class App {
             return "OK";
         });
         before((req, res) -> {
-            res.header("Access-Control-Allow-Origin", "*");
+            // Admin routes are for operators, never for cross-origin browser calls
+            if (!req.pathInfo().startsWith("/admin/")) res.header("Access-Control-Allow-Origin", "*");
 
             System.out.println(">>> " + req.requestMethod() + " " + req.uri()
                     + (req.raw().getQueryString() != null ? "?" + req.raw().getQueryString() : ""));
@@ -43,9 +58,45 @@ public class App {
         // Healthcheck
         get("/health", (req, res) -> JsonUtil.toJson(Map.of("ok", true)));
 
-        StudentDao dao = new StudentDao();
+        // Readiness: the DB answers and the SessionFactory is built
+        get("/ready", (req, res) -> {
+            boolean jdbc = DB.isReachable();
+            boolean ready = jdbc && HibernateUtil.isReady();
+            if (!ready) res.status(503);
+            return JsonUtil.toJson(Map.of("ready", ready, "jdbc", jdbc ? "up" : "down", "orm", HibernateUtil.status()));
+        });
+
+        // Aggregates for GET /students/stats, shared by the JDBC and ORM DAOs
+        StudentStats stats = new StudentStats();
+        StudentDao dao = new StudentDao(stats);
+        stats.startReconciling(dao::countByAgeAndDay,
+                Long.parseLong(DB.getProperty("db.stats.reconcile_minutes", "10")));
         String localhost = "http://localhost:8080";
 
+        // Optional write-behind for PUT /students/:id, used when the client sends "Prefer: respond-async"
+        StudentUpdateQueue updateQueue = null;
+        if (Boolean.parseBoolean(DB.getProperty("db.write_behind.enabled", "false"))) {
+            updateQueue = new StudentUpdateQueue(
+                    dao,
+                    Path.of(DB.getProperty("db.write_behind.journal_dir", "data/write-behind")),
+                    Long.parseLong(DB.getProperty("db.write_behind.window_ms", "50")),
+                    Integer.parseInt(DB.getProperty("db.write_behind.max_pending", "10000")),
+                    Integer.parseInt(DB.getProperty("db.write_behind.batch_size", "500"))
+            );
+            Runtime.getRuntime().addShutdownHook(new Thread(updateQueue::close));
+        }
+        StudentUpdateQueue writeBehind = updateQueue;
+        // How long a synchronous PUT waits for queued updates to the same id before answering 503
+        long flushWaitMs = Long.parseLong(DB.getProperty("db.write_behind.flush_wait_ms", "5000"));
+
+        // Idempotency-Key on create: retries replay the first response instead of hitting the DB
+        Idempotency idempotency = new Idempotency(
+                Boolean.parseBoolean(DB.getProperty("db.idempotency.persistent", "false")) ? new IdempotencyDao() : null,
+                Long.parseLong(DB.getProperty("db.idempotency.ttl_seconds", "86400")) * 1000,
+                Integer.parseInt(DB.getProperty("db.idempotency.max_entries", "10000")),
+                Long.parseLong(DB.getProperty("db.idempotency.wait_ms", "30000"))
+        );
+
         // === CRUD - REST API via Spark ===
 
         // Get all with filter by email
@@ -65,6 +116,17 @@ public class App {
             return JsonUtil.toJson(list);
         });
 
+        // Count, age histogram and signups per day, served from memory
+        // (registered before /students/:id so "stats" is not taken for an id)
+        get("/students/stats", (req, res) -> {
+            if (!stats.isReady()) {
+                res.status(503);
+                res.header("Retry-After", "1");
+                return JsonUtil.toJson(Map.of("error", "Stats not ready"));
+            }
+            return JsonUtil.toJson(stats.snapshot());
+        });
+
         // Get by id
         get("/students/:id", (req, res) -> {
             try {
@@ -82,7 +144,7 @@ public class App {
         });
 
         // Create
-        post("/students", (req, res) -> {
+        post("/students", idempotency.wrap((req, res) -> {
             var body = JsonUtil.fromJson(req.body(), StudentCreateRequest.class);
 
             // Validate
@@ -106,7 +168,7 @@ public class App {
             res.header("Location", localhost + "/students/" + created.id());
 
             return JsonUtil.toJson(created);
-        });
+        }));
 
         // Update
         put("/students/:id", (req, res) -> {
@@ -128,15 +190,56 @@ public class App {
                 return JsonUtil.toJson(Map.of("errors", errors));
             }
 
+            String prefer = req.headers("Prefer");
+            if (writeBehind != null && prefer != null && prefer.contains("respond-async")) {
+                // Durable in the journal, applied by the flusher; existence is reported via the ticket
+                long ticket;
+                try {
+                    ticket = writeBehind.enqueue(id, body.fullName, body.age);
+                } catch (IllegalStateException ex) {
+                    res.status(503);
+                    res.header("Retry-After", "1");
+                    return JsonUtil.toJson(Map.of("error", ex.getMessage()));
+                }
+                res.status(202);
+                res.header("Location", localhost + "/students/updates/" + ticket);
+                return JsonUtil.toJson(writeBehind.status(ticket));
+            }
+
             if (dao.findById(id).isEmpty()) {
                 res.status(404);
                 return JsonUtil.toJson(Map.of("error", "Not found"));
             }
 
+            if (writeBehind != null) {
+                try {
+                    writeBehind.awaitFlushed(id, flushWaitMs);
+                } catch (IllegalStateException ex) {
+                    res.status(503);
+                    res.header("Retry-After", "1");
+                    return JsonUtil.toJson(Map.of("error", ex.getMessage()));
+                }
+            }
             Student updated = dao.update(id, body.fullName, body.age);
             return JsonUtil.toJson(updated);
         });
 
+        // Status of an asynchronous update: pending | committed | not_found | failed
+        get("/students/updates/:ticket", (req, res) -> {
+            try {
+                long ticket = Long.parseLong(req.params(":ticket"));
+                var status = writeBehind == null ? null : writeBehind.status(ticket);
+                if (status == null) {
+                    res.status(404);
+                    return JsonUtil.toJson(Map.of("error", "Not found"));
+                }
+                return JsonUtil.toJson(status);
+            } catch (NumberFormatException ex) {
+                res.status(400);
+                return JsonUtil.toJson(Map.of("error", "Invalid ticket"));
+            }
+        });
+
         // Delete
         delete("/students/:id", (req, res) -> {
             try {
@@ -154,6 +257,41 @@ public class App {
             }
         });
 
+        // === Admin: slow-query log ===
+        // Plans contain real bind values (emails, ...), so these routes are off unless
+        // db.admin.enabled=true and every call carries "Authorization: Bearer <db.admin.token>"
+        String adminToken = DB.getProperty("db.admin.token", "");
+        if (Boolean.parseBoolean(DB.getProperty("db.admin.enabled", "false"))) {
+            if (adminToken.isBlank()) {
+                System.out.println(">>> Admin routes disabled: db.admin.token is not set");
+            } else {
+                byte[] expected = ("Bearer " + adminToken).getBytes(StandardCharsets.UTF_8);
+                before("/admin/*", (req, res) -> {
+                    String auth = req.headers("Authorization");
+                    if (auth != null && MessageDigest.isEqual(expected, auth.getBytes(StandardCharsets.UTF_8))) return;
+                    res.type("application/json");
+                    res.header("WWW-Authenticate", "Bearer");
+                    halt(401, JsonUtil.toJson(Map.of("error", "Unauthorized")));
+                });
+
+                // Per-fingerprint aggregates, most expensive (total time) first
+                get("/admin/queries", (req, res) -> JsonUtil.toJson(Map.of(
+                        "slowThresholdMs", DB.profiler().slowThresholdMs(),
+                        "queries", DB.profiler().stats()
+                )));
+
+                // Recent slow executions with their captured EXPLAIN plans
+                get("/admin/queries/slow", (req, res) -> JsonUtil.toJson(DB.profiler().slowQueries()));
+
+                // Reset all aggregates
+                delete("/admin/queries", (req, res) -> {
+                    DB.profiler().reset();
+                    res.status(204);
+                    return "";
+                });
+            }
+        }
+
         // Exception fallback
         exception(Exception.class, (e, req, res) -> {
             res.type("application/json");
@@ -163,7 +301,15 @@ public class App {
 
 
         // === CRUD via Hibernate ORM ===
-        HibernateStudentDao hdao = new HibernateStudentDao();
+        HibernateStudentDao hdao = new HibernateStudentDao(stats);
+
+        // Don't block request threads on a SessionFactory that is still being built
+        before("/orm/*", (req, res) -> {
+            if (req.requestMethod().equals("OPTIONS") || HibernateUtil.isReady()) return;
+            res.type("application/json");
+            res.header("Retry-After", String.valueOf(HibernateUtil.retryAfterSeconds()));
+            halt(503, JsonUtil.toJson(Map.of("error", "ORM not ready", "orm", HibernateUtil.status())));
+        });
 
         // Get all / filter by email
         get("/orm/students", (req, res) -> {
@@ -197,7 +343,7 @@ public class App {
         });
 
         // Create
-        post("/orm/students", (req, res) -> {
+        post("/orm/students", idempotency.wrap((req, res) -> {
             var body = JsonUtil.fromJson(req.body(), StudentCreateRequest.class);
 
             List<String> errors = new ArrayList<>();
@@ -212,7 +358,7 @@ public class App {
             res.status(201);
             res.header("Location", localhost + "/orm/students/" + created.getId());
             return JsonUtil.toJson(created);
-        });
+        }));
 
         // Update
         put("/orm/students/:id", (req, res) -> {
@@ -227,6 +373,15 @@ public class App {
             if (body.age == null || body.age < 16) errors.add("age must be >= 16");
             if (!errors.isEmpty()) { res.status(400); return JsonUtil.toJson(Map.of("errors", errors)); }
 
+            if (writeBehind != null) {
+                try {
+                    writeBehind.awaitFlushed(id, flushWaitMs);
+                } catch (IllegalStateException ex) {
+                    res.status(503); res.header("Retry-After", "1");
+                    return JsonUtil.toJson(Map.of("error", ex.getMessage()));
+                }
+            }
+
             try {
                 StudentEntity updated = hdao.update(id, body.fullName, body.age);
                 return JsonUtil.toJson(updated);
@@ -246,5 +401,15 @@ public class App {
                 res.status(400); return JsonUtil.toJson(Map.of("error","Invalid UUID"));
             }
         });
+
+        awaitInitialization();
+        System.out.println(">>> HTTP ready in " + ManagementFactory.getRuntimeMXBean().getUptime()
+                + " ms (startup=" + startup + ")");
+
+        // -Dapp.exitAfterStartup=true: training run that produces the AppCDS archive (pom profile "appcds")
+        if (Boolean.getBoolean("app.exitAfterStartup")) {
+            HibernateUtil.awaitStartup();
+            System.exit(0);
+        }
     }
 }
@@ -2,6 +2,7 @@ package demo.jdbc.dao;
 
 import demo.jdbc.model.orm.StudentEntity;
 import demo.jdbc.orm.HibernateUtil;
+import org.hibernate.LockMode;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
@@ -11,6 +12,12 @@ import java.util.Optional;
 import java.util.UUID;
 
 public class HibernateStudentDao {
+    private final StudentStats stats;
+
+    public HibernateStudentDao(StudentStats stats) {
+        this.stats = stats;
+    }
+
     public List<StudentEntity> findAll() {
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             // Hibernate Query Language (HQL)
@@ -66,8 +73,10 @@ public class HibernateStudentDao {
             session.persist(student);
             session.flush();
             session.refresh(student);
+            long xid = currentXid(session);
 
             transaction.commit();
+            stats.inserted(xid, student.getAge(), student.getCreatedAt());
             return student;
         } catch (Exception e) {
             if (transaction != null) transaction.rollback();
@@ -80,16 +89,20 @@ public class HibernateStudentDao {
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
 
-            StudentEntity student = session.get(StudentEntity.class, id);
+            // FOR UPDATE: the old age must still be current when we commit, or the stats drift
+            StudentEntity student = session.get(StudentEntity.class, id, LockMode.PESSIMISTIC_WRITE);
             if (student == null) throw new RuntimeException("Not found student with id: " + id);
+            int oldAge = student.getAge();
 
             student.setFullName(fullName);
             student.setAge(age);
 
             session.flush();
             session.refresh(student);
+            long xid = currentXid(session);
 
             transaction.commit();
+            stats.updated(xid, oldAge, student.getAge());
             return student;
         } catch (Exception e) {
             if (transaction !=null) transaction.rollback();
@@ -102,17 +115,27 @@ public class HibernateStudentDao {
         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
             transaction = session.beginTransaction();
 
-            StudentEntity student = session.get(StudentEntity.class, id);
+            // FOR UPDATE, so the age reported to the stats is the one actually deleted
+            StudentEntity student = session.get(StudentEntity.class, id, LockMode.PESSIMISTIC_WRITE);
             if (student == null) {
                 transaction.rollback();
                 return false;
             }
             session.remove(student);
+            session.flush();
+            long xid = currentXid(session);
             transaction.commit();
+            stats.deleted(xid, student.getAge(), student.getCreatedAt());
             return true;
         } catch (Exception e) {
             if (transaction != null) transaction.rollback();
             throw e;
         }
     }
+
+    // Id of the open transaction, so StudentStats can tell whether a rebuild scan already saw this write
+    private static long currentXid(Session session) {
+        return session.createNativeQuery("SELECT CAST(CAST(pg_current_xact_id() AS text) AS bigint)", Long.class)
+                .getSingleResult();
+    }
 }
@@ -0,0 +1,107 @@
+package demo.jdbc.dao;
+
+import demo.jdbc.db.DB;
+import demo.jdbc.model.IdempotencyRecord;
+
+import java.sql.*;
+import java.util.Optional;
+
+public class IdempotencyDao {
+    // Inserts an in-flight row, or takes over one that expired or was abandoned by a crashed node.
+    // Returns true when this caller now owns the key.
+    public boolean claim(String key, String requestHash, long ttlSeconds, long staleSeconds) {
+        String sql = """
+                INSERT INTO app.idempotency_keys(key, request_hash)
+                VALUES (?, ?)
+                ON CONFLICT (key) DO UPDATE
+                SET request_hash = EXCLUDED.request_hash, status = NULL, location = NULL, body = NULL,
+                    created_at = NOW()
+                WHERE app.idempotency_keys.created_at < NOW() - make_interval(secs => ?)
+                   OR (app.idempotency_keys.status IS NULL
+                       AND app.idempotency_keys.created_at < NOW() - make_interval(secs => ?))
+                RETURNING key
+                """;
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)
+        ) {
+            ps.setString(1, key);
+            ps.setString(2, requestHash);
+            ps.setLong(3, ttlSeconds);
+            ps.setLong(4, staleSeconds);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("DB error: " + e.getMessage(), e);
+        }
+    }
+
+    public Optional<IdempotencyRecord> findByKey(String key) {
+        String sql = """
+                SELECT key, request_hash, status, location, body
+                FROM app.idempotency_keys
+                WHERE key = ?
+                """;
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)
+        ) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return Optional.empty();
+                return Optional.of(new IdempotencyRecord(
+                        rs.getString("key"),
+                        rs.getString("request_hash"),
+                        (Integer) rs.getObject("status"),
+                        rs.getString("location"),
+                        rs.getString("body")
+                ));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("DB error: " + e.getMessage(), e);
+        }
+    }
+
+    public void complete(String key, int status, String location, String body) {
+        String sql = """
+                UPDATE app.idempotency_keys
+                SET status = ?, location = ?, body = ?
+                WHERE key = ?
+                """;
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)
+        ) {
+            ps.setInt(1, status);
+            ps.setString(2, location);
+            ps.setString(3, body);
+            ps.setString(4, key);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("DB error: " + e.getMessage(), e);
+        }
+    }
+
+    // Drops an in-flight claim so a retry can run the request again
+    public void release(String key) {
+        String sql = "DELETE FROM app.idempotency_keys WHERE key = ? AND status IS NULL";
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)
+        ) {
+            ps.setString(1, key);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("DB error: " + e.getMessage(), e);
+        }
+    }
+
+    public int deleteExpired(long ttlSeconds) {
+        String sql = "DELETE FROM app.idempotency_keys WHERE created_at < NOW() - make_interval(secs => ?)";
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)
+        ) {
+            ps.setLong(1, ttlSeconds);
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("DB error: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package demo.jdbc.dao;
 
 import demo.jdbc.model.Student;
+import demo.jdbc.model.StudentCountBucket;
+import demo.jdbc.model.StudentUpdate;
 import demo.jdbc.db.DB;
 
 import java.sql.*;
 import java.util.*;
 
 public class StudentDao {
+    private record AgeChange(long xid, Integer oldAge, Integer newAge) {}
+
+    private final StudentStats stats;
+
+    public StudentDao(StudentStats stats) {
+        this.stats = stats;
+    }
+
     public List<Student> findAll() {
         String sql = """
                 SELECT id, full_name, email, age, created_at
@@ -83,7 +93,7 @@ public class StudentDao {
         String sql = """
                 INSERT INTO app.students(full_name, email, age)
                 VALUES (?, ?, ?)
-                RETURNING id, full_name, email, age, created_at
+                RETURNING id, full_name, email, age, created_at, pg_current_xact_id()::text::bigint AS xid
                 """;
         try (Connection con = DB.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)
@@ -94,7 +104,9 @@ public class StudentDao {
 
             try (ResultSet rs = ps.executeQuery()) {
                 rs.next();
-                return mapRow(rs);
+                Student created = mapRow(rs);
+                stats.inserted(rs.getLong("xid"), created.age(), created.createdAt());
+                return created;
             }
         } catch (SQLException e) {
             throw new RuntimeException("DB error: " + e.getMessage(), e);
@@ -103,10 +115,12 @@ public class StudentDao {
 
     public Student update(UUID id, String fullName, Integer age) {
         String sql = """
-                UPDATE app.students
+                UPDATE app.students AS s
                 SET full_name = ?, age = ?
-                WHERE id = ?
-                RETURNING id, full_name, email, age, created_at
+                FROM (SELECT id, age FROM app.students WHERE id = ? FOR UPDATE) AS prev
+                WHERE s.id = prev.id
+                RETURNING s.id, s.full_name, s.email, s.age, s.created_at, prev.age AS old_age,
+                          pg_current_xact_id()::text::bigint AS xid
                 """;
         try (Connection con = DB.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)
@@ -117,20 +131,136 @@ public class StudentDao {
 
             try (ResultSet rs = ps.executeQuery()) {
                 if (!rs.next()) throw new RuntimeException("Not found student with id: " + id);
-                return mapRow(rs);
+                Student updated = mapRow(rs);
+                stats.updated(rs.getLong("xid"), (Integer) rs.getObject("old_age"), updated.age());
+                return updated;
             }
         } catch (SQLException e) {
             throw new RuntimeException("DB error: " + e.getMessage(), e);
         }
     }
 
+    // One transaction, chunkSize rows per UPDATE ... FROM unnest(...); ids must be distinct.
+    // Returns the ids that matched a row.
+    public Set<UUID> updateAll(List<StudentUpdate> updates, int chunkSize) {
+        Set<UUID> updated = new HashSet<>();
+        List<AgeChange> changes = new ArrayList<>();
+        try (Connection con = DB.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                for (int from = 0; from < updates.size(); from += chunkSize) {
+                    List<StudentUpdate> chunk = updates.subList(from, Math.min(from + chunkSize, updates.size()));
+                    updateChunk(con, chunk, updated, changes);
+                }
+                con.commit();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+            for (AgeChange c : changes) stats.updated(c.xid(), c.oldAge(), c.newAge());
+        } catch (SQLException e) {
+            throw new RuntimeException("DB error: " + e.getMessage(), e);
+        }
+        return updated;
+    }
+
+    private void updateChunk(Connection con, List<StudentUpdate> chunk, Set<UUID> updated, List<AgeChange> changes)
+            throws SQLException {
+        // Three array parameters instead of one VALUES tuple per row: the SQL text (and so the
+        // prepared plan and the profiler fingerprint) is the same for every chunk size
+        String sql = """
+                UPDATE app.students AS s
+                SET full_name = x.full_name, age = x.age
+                FROM (
+                    SELECT o.id, o.age AS old_age, v.full_name, v.age
+                    FROM unnest(CAST(? AS uuid[]), CAST(? AS varchar[]), CAST(? AS int[])) AS v(id, full_name, age)
+                    JOIN app.students o ON o.id = v.id
+                    FOR UPDATE OF o
+                ) AS x
+                WHERE s.id = x.id
+                RETURNING s.id, x.old_age, s.age, pg_current_xact_id()::text::bigint AS xid
+                """;
+        UUID[] ids = new UUID[chunk.size()];
+        String[] names = new String[chunk.size()];
+        Integer[] ages = new Integer[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            ids[i] = chunk.get(i).id();
+            names[i] = chunk.get(i).fullName();
+            ages[i] = chunk.get(i).age();
+        }
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setArray(1, con.createArrayOf("uuid", ids));
+            ps.setArray(2, con.createArrayOf("varchar", names));
+            ps.setArray(3, con.createArrayOf("int4", ages));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    updated.add((UUID) rs.getObject("id"));
+                    changes.add(new AgeChange(rs.getLong("xid"),
+                            (Integer) rs.getObject("old_age"), (Integer) rs.getObject("age")));
+                }
+            }
+        }
+    }
+
     public boolean deleteById(UUID id) {
-        String sql = "DELETE FROM app.students WHERE id = ?";
+        String sql = """
+                DELETE FROM app.students WHERE id = ?
+                RETURNING age, created_at, pg_current_xact_id()::text::bigint AS xid
+                """;
         try (Connection con = DB.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)
         ) {
             ps.setObject(1, id);
-            return ps.executeUpdate() > 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return false;
+                stats.deleted(rs.getLong("xid"), (Integer) rs.getObject("age"),
+                        rs.getTimestamp("created_at").toInstant());
+                return true;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("DB error: " + e.getMessage(), e);
+        }
+    }
+
+    // Single grouped scan used to (re)build StudentStats, together with the MVCC snapshot it
+    // read from (REPEATABLE READ: both statements share one snapshot)
+    public StudentStats.Scan countByAgeAndDay() {
+        String sql = """
+                SELECT age, (created_at AT TIME ZONE 'UTC')::date AS day, COUNT(*) AS n
+                FROM app.students
+                GROUP BY age, day
+                """;
+        try (Connection con = DB.getConnection()) {
+            con.setAutoCommit(false);
+            con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            con.setReadOnly(true);
+            try {
+                String snapshot;
+                try (PreparedStatement ps = con.prepareStatement("SELECT pg_current_snapshot()::text");
+                     ResultSet rs = ps.executeQuery()
+                ) {
+                    rs.next();
+                    snapshot = rs.getString(1);
+                }
+
+                List<StudentCountBucket> list = new ArrayList<>();
+                try (PreparedStatement ps = con.prepareStatement(sql);
+                     ResultSet rs = ps.executeQuery()
+                ) {
+                    while (rs.next()) {
+                        list.add(new StudentCountBucket(
+                                (Integer) rs.getObject("age"),
+                                rs.getDate("day").toLocalDate(),
+                                rs.getLong("n")
+                        ));
+                    }
+                }
+                con.commit();
+                return new StudentStats.Scan(snapshot, list);
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             throw new RuntimeException("DB error: " + e.getMessage(), e);
         }
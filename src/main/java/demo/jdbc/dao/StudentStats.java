@@ -0,0 +1,212 @@
+package demo.jdbc.dao;
+
+import demo.jdbc.model.StudentCountBucket;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-memory student aggregates (count, age histogram, signups per UTC day), kept up to date by
+ * the DAOs after every committed write and periodically rebuilt from one grouped scan.
+ * <p>
+ * Writers are never blocked by a rebuild. Every write reports the id of the transaction that
+ * made it ({@code pg_current_xact_id()}), and the scan reports the MVCC snapshot it read from
+ * ({@code pg_current_snapshot()}). Writes reported while a scan runs are buffered, and once the
+ * scan is done only those its snapshot could not see are applied on top of it, so a rebuild
+ * never double counts or drops a concurrent write.
+ */
+public class StudentStats {
+    public record Snapshot(
+            long count,
+            Map<Integer, Long> ageHistogram,
+            long unknownAge,
+            Map<String, Long> signupsPerDay,
+            Instant reconciledAt,
+            long lastDrift) {}
+
+    // Result of one grouped scan, with the snapshot (text form "xmin:xmax:xip,...") it was read from
+    public record Scan(String snapshot, List<StudentCountBucket> buckets) {}
+
+    private record Delta(long xid, Integer age, LocalDate day, long countDelta, Integer oldAge) {}
+
+    private static final long RETRY_SECONDS = 1;
+
+    private long count;
+    private final Map<Integer, Long> ages = new HashMap<>();
+    private long unknownAge;
+    private final Map<LocalDate, Long> days = new HashMap<>();
+
+    // Non-null while a scan runs: writes reported meanwhile, in arrival order
+    private List<Delta> duringScan;
+    // What the last swapped-in scan already counted
+    private TxSnapshot lastScan;
+    private Instant reconciledAt;
+    private long lastDrift;
+
+    // === Writes (called by the DAOs after commit, with the writing transaction's id) ===
+
+    public synchronized void inserted(long xid, Integer age, Instant createdAt) {
+        apply(new Delta(xid, age, day(createdAt), 1, null));
+    }
+
+    public synchronized void updated(long xid, Integer oldAge, Integer newAge) {
+        if (Objects.equals(oldAge, newAge)) return;
+        apply(new Delta(xid, newAge, null, 0, oldAge));
+    }
+
+    public synchronized void deleted(long xid, Integer age, Instant createdAt) {
+        apply(new Delta(xid, age, day(createdAt), -1, null));
+    }
+
+    private void apply(Delta d) {
+        if (duringScan != null) duringScan.add(d);
+        // A writer that committed before the last scan but reports only now is already in it
+        if (lastScan == null || !lastScan.sees(d.xid())) applyTo(d);
+    }
+
+    // Shared by live writes and by replaying buffered ones onto a fresh scan
+    private void applyTo(Delta d) {
+        if (d.countDelta() == 0) {
+            addAge(d.oldAge(), -1);
+            addAge(d.age(), 1);
+        } else {
+            count += d.countDelta();
+            addAge(d.age(), d.countDelta());
+            add(days, d.day(), d.countDelta());
+        }
+    }
+
+    private void addAge(Integer age, long delta) {
+        if (age == null) unknownAge += delta;
+        else add(ages, age, delta);
+    }
+
+    private static <K> void add(Map<K, Long> map, K key, long delta) {
+        long n = map.getOrDefault(key, 0L) + delta;
+        if (n == 0) map.remove(key);
+        else map.put(key, n);
+    }
+
+    private static LocalDate day(Instant createdAt) {
+        return LocalDate.ofInstant(createdAt, ZoneOffset.UTC);
+    }
+
+    // === Queries ===
+
+    public synchronized boolean isReady() {
+        return reconciledAt != null;
+    }
+
+    public synchronized Snapshot snapshot() {
+        Map<String, Long> perDay = new TreeMap<>();
+        days.forEach((d, n) -> perDay.put(d.toString(), n));
+        return new Snapshot(count, new TreeMap<>(ages), unknownAge, perDay, reconciledAt, lastDrift);
+    }
+
+    // === Reconciliation ===
+
+    // Rebuilds from a full grouped scan plus the writes it could not see; false if a scan is already running
+    public boolean reconcile(Supplier<Scan> scanner) {
+        synchronized (this) {
+            if (duringScan != null) return false;
+            // Must start before the scan takes its snapshot, so no later commit can slip past both
+            duringScan = new ArrayList<>();
+        }
+
+        Scan scan;
+        try {
+            scan = scanner.get();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                duringScan = null;
+            }
+            throw e;
+        }
+        TxSnapshot visible = TxSnapshot.parse(scan.snapshot());
+
+        synchronized (this) {
+            List<Delta> missed = duringScan;
+            duringScan = null;
+
+            long oldCount = count;
+            Map<Integer, Long> oldAges = new HashMap<>(ages);
+            Map<LocalDate, Long> oldDays = new HashMap<>(days);
+
+            count = 0;
+            unknownAge = 0;
+            ages.clear();
+            days.clear();
+            for (StudentCountBucket b : scan.buckets()) {
+                count += b.count();
+                addAge(b.age(), b.count());
+                add(days, b.day(), b.count());
+            }
+            for (Delta d : missed) {
+                if (!visible.sees(d.xid())) applyTo(d);
+            }
+
+            if (reconciledAt != null) {
+                lastDrift = count - oldCount;
+                if (lastDrift != 0 || !ages.equals(oldAges) || !days.equals(oldDays)) {
+                    System.out.println(">>> Student stats drifted, rebuilt from DB (count drift " + lastDrift + ")");
+                }
+            }
+            lastScan = visible;
+            reconciledAt = Instant.now();
+            return true;
+        }
+    }
+
+    // Builds the initial aggregates in the background, then reconciles every periodMinutes
+    public void startReconciling(Supplier<Scan> scanner, long periodMinutes) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "student-stats-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMs = TimeUnit.MINUTES.toMillis(periodMinutes);
+        scheduler.scheduleWithFixedDelay(() -> {
+            Instant last;
+            synchronized (this) {
+                last = reconciledAt;
+            }
+            // Retry quickly until the first build succeeds (e.g. DB down at boot)
+            if (last != null && last.plusMillis(periodMs).isAfter(Instant.now())) return;
+            try {
+                reconcile(scanner);
+            } catch (RuntimeException e) {
+                System.out.println(">>> Student stats reconcile failed: " + e.getMessage());
+            }
+        }, 0, RETRY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Postgres pg_snapshot: a transaction is visible iff it is below xmax and was not in progress
+    private record TxSnapshot(long xmin, long xmax, Set<Long> inProgress) {
+        static TxSnapshot parse(String text) {
+            String[] parts = text.split(":", -1);
+            Set<Long> xip = new HashSet<>();
+            if (parts.length > 2 && !parts[2].isEmpty()) {
+                for (String x : parts[2].split(",")) xip.add(Long.parseLong(x));
+            }
+            return new TxSnapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), xip);
+        }
+
+        boolean sees(long xid) {
+            if (xid < xmin) return true;
+            return xid < xmax && !inProgress.contains(xid);
+        }
+    }
+}
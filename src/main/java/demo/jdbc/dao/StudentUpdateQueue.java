@@ -0,0 +1,338 @@
+package demo.jdbc.dao;
+
+import demo.jdbc.model.StudentUpdate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind queue for {@code PUT /students/:id}.
+ * <p>
+ * Updates are coalesced per student id (last write wins), journaled and fsynced before the
+ * caller gets its ticket, then applied by a single flusher thread: after a short window it
+ * drains every pending id and commits them in one transaction via {@link StudentDao#updateAll}.
+ * Acknowledged updates that were not committed yet are replayed from the journal on startup.
+ */
+public class StudentUpdateQueue implements AutoCloseable {
+    public record Status(long ticket, String status, String error) {}
+
+    // Status is answered for the most recent MAX_TRACKED tickets of this run (plus replayed ones)
+    static final long MAX_TRACKED = 100_000;
+    private static final long RETRY_DELAY_MS = 1_000;
+
+    private static class Pending {
+        final UUID id;
+        String fullName;
+        Integer age;
+        final List<Long> seqs = new ArrayList<>();
+
+        Pending(UUID id, String fullName, Integer age, long seq) {
+            this.id = id;
+            this.fullName = fullName;
+            this.age = age;
+            seqs.add(seq);
+        }
+
+        void merge(String fullName, Integer age, long seq) {
+            this.fullName = fullName;
+            this.age = age;
+            seqs.add(seq);
+        }
+    }
+
+    private final StudentDao dao;
+    private final UpdateJournal journal;
+    private final long windowNanos;
+    private final int maxPending;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final LinkedHashMap<UUID, Pending> pending = new LinkedHashMap<>();
+    private final Set<UUID> inFlight = new HashSet<>();
+    // Only tickets that did not end up "committed" are remembered, pruned with the tracking window
+    private final NavigableMap<Long, Status> outcomes = new TreeMap<>();
+    // Tickets acknowledged by a previous run and replayed from the journal
+    private final Set<Long> replayedSeqs = new HashSet<>();
+    private final long firstSeq;
+    private long lastSeq;
+    private long committedSeq;
+    private boolean flushRequested;
+    private boolean closed;
+
+    private final Thread flusher;
+
+    public StudentUpdateQueue(StudentDao dao, Path journalDir, long windowMs, int maxPending, int batchSize) {
+        this.dao = dao;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+
+        List<UpdateJournal.Entry> replayed;
+        try {
+            this.journal = new UpdateJournal(journalDir);
+            replayed = journal.replay();
+        } catch (IOException e) {
+            throw new RuntimeException("Write-behind journal error: " + e.getMessage(), e);
+        }
+
+        // Tickets must not repeat across restarts, so numbering starts from the clock
+        long maxReplayed = 0;
+        for (UpdateJournal.Entry e : replayed) {
+            put(e.seq(), e.id(), e.fullName(), e.age());
+            replayedSeqs.add(e.seq());
+            maxReplayed = Math.max(maxReplayed, e.seq());
+        }
+        lastSeq = Math.max(maxReplayed, System.currentTimeMillis() * 1000);
+        firstSeq = lastSeq + 1;
+        committedSeq = replayed.isEmpty() ? lastSeq : replayed.get(0).seq() - 1;
+        if (!replayed.isEmpty()) {
+            System.out.println(">>> Write-behind: replaying " + replayed.size() + " journaled updates");
+        }
+
+        flusher = new Thread(this::runFlusher, "student-update-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Returns the ticket once the update is durable in the journal; throws IllegalStateException when full
+    public long enqueue(UUID id, String fullName, Integer age) {
+        long seq;
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("Write-behind queue is closed");
+            if (!pending.containsKey(id) && pending.size() >= maxPending) {
+                throw new IllegalStateException("Write-behind queue is full");
+            }
+            seq = ++lastSeq;
+            try {
+                journal.append(new UpdateJournal.Entry(seq, id, fullName, age));
+            } catch (IOException e) {
+                // Never reaches the flusher, so it must not be reported as committed later
+                outcomes.put(seq, new Status(seq, "failed", e.getMessage()));
+                throw new RuntimeException("Write-behind journal error: " + e.getMessage(), e);
+            }
+            put(seq, id, fullName, age);
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            journal.awaitDurable(seq);
+        } catch (IOException e) {
+            throw new RuntimeException("Write-behind journal error: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing journal", e);
+        }
+        return seq;
+    }
+
+    private void put(long seq, UUID id, String fullName, Integer age) {
+        Pending p = pending.get(id);
+        if (p == null) pending.put(id, new Pending(id, fullName, age, seq));
+        else p.merge(fullName, age, seq);
+    }
+
+    // null when the ticket was not issued by this node, or is too old to be tracked
+    public Status status(long ticket) {
+        lock.lock();
+        try {
+            boolean issued = ticket >= firstSeq && ticket <= lastSeq && ticket > lastSeq - MAX_TRACKED;
+            if (!issued && !replayedSeqs.contains(ticket)) return null;
+            if (ticket > committedSeq) return new Status(ticket, "pending", null);
+            return outcomes.getOrDefault(ticket, new Status(ticket, "committed", null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Synchronous writers call this first, so a queued older value can't overwrite theirs later.
+    // Throws IllegalStateException after timeoutMs (e.g. DB down, flusher retrying) so the caller can answer 503.
+    public void awaitFlushed(UUID id, long timeoutMs) {
+        lock.lock();
+        try {
+            if (!pending.containsKey(id) && !inFlight.contains(id)) return;
+            long target = lastSeq;
+            flushRequested = true;
+            hasWork.signal();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (committedSeq < target && !closed) {
+                if (remaining <= 0) throw new IllegalStateException("Write-behind flush is not keeping up");
+                remaining = flushed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for write-behind flush", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            List<Pending> batch;
+            List<Path> segments;
+            long upTo;
+
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) hasWork.await();
+                if (pending.isEmpty()) return;
+
+                // Give further writes to the same rows one window to coalesce
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining;
+                while (!flushRequested && !closed && (remaining = deadline - System.nanoTime()) > 0) {
+                    hasWork.awaitNanos(remaining);
+                }
+                flushRequested = false;
+
+                segments = journal.rotate();
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                for (Pending p : batch) inFlight.add(p.id);
+                upTo = lastSeq;
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println(">>> Write-behind: journal rotation failed: " + e.getMessage());
+                sleepQuietly();
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            if (!flush(batch)) {
+                // Closing while the DB is unreachable: the journal keeps these for the next start
+                return;
+            }
+            journal.delete(segments);
+
+            lock.lock();
+            try {
+                inFlight.clear();
+                committedSeq = upTo;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Commits the batch, retrying while the DB is unreachable; false if closed before it succeeded
+    private boolean flush(List<Pending> batch) {
+        List<StudentUpdate> updates = new ArrayList<>(batch.size());
+        for (Pending p : batch) updates.add(new StudentUpdate(p.id, p.fullName, p.age));
+
+        while (true) {
+            try {
+                Set<UUID> updated = dao.updateAll(updates, batchSize);
+                recordNotFound(batch, updated);
+                return true;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    flushOneByOne(batch);
+                    return true;
+                }
+                System.out.println(">>> Write-behind: flush failed, retrying: " + e.getMessage());
+                if (isClosed()) return false;
+                sleepQuietly();
+            }
+        }
+    }
+
+    // One bad row (e.g. a too long name) must not block the rest of the batch
+    private void flushOneByOne(List<Pending> batch) {
+        for (Pending p : batch) {
+            try {
+                Set<UUID> updated = dao.updateAll(List.of(new StudentUpdate(p.id, p.fullName, p.age)), 1);
+                recordNotFound(List.of(p), updated);
+            } catch (RuntimeException e) {
+                record(p, "failed", e.getMessage());
+            }
+        }
+    }
+
+    private void recordNotFound(List<Pending> batch, Set<UUID> updated) {
+        for (Pending p : batch) {
+            if (!updated.contains(p.id)) record(p, "not_found", null);
+        }
+    }
+
+    private void record(Pending p, String status, String error) {
+        lock.lock();
+        try {
+            for (long seq : p.seqs) outcomes.put(seq, new Status(seq, status, error));
+            // Tickets that fell out of the window are unknown anyway; replayed ones sit below firstSeq
+            long floor = lastSeq - MAX_TRACKED;
+            if (floor >= firstSeq) outcomes.subMap(firstSeq, true, floor, true).clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && sql.getSQLState() != null) {
+                String state = sql.getSQLState();
+                // connection exception, transaction rollback, operator intervention
+                return state.startsWith("08") || state.startsWith("40") || state.startsWith("57");
+            }
+        }
+        return false;
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(RETRY_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Flushes what is queued (one attempt if the DB is down) and closes the journal
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            hasWork.signalAll();
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+            journal.close();
+            System.out.println(">>> Shutting down... closed write-behind queue");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println(">>> Write-behind: closing journal failed: " + e.getMessage());
+        }
+    }
+}
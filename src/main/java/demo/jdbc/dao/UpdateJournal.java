@@ -0,0 +1,290 @@
+package demo.jdbc.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of accepted write-behind updates, split into segments.
+ * <p>
+ * Writers append, then wait in {@link #awaitDurable(long)}: one of them fsyncs on behalf of
+ * everyone that appended before it (group commit). The flusher seals the current segment with
+ * {@link #rotate()} when it drains the queue and deletes the sealed segments once their updates
+ * are committed, so whatever is still on disk at startup was acknowledged but not yet applied.
+ * <p>
+ * Each record is one line {@code seq id age base64(name) crc32}; on replay a line that is not
+ * newline-terminated or whose checksum does not match is a torn write and is skipped.
+ * <p>
+ * A failed fsync is sticky: after it the kernel may already have dropped the dirty pages, so a
+ * later fsync "succeeding" proves nothing. Records written since the last good fsync are never
+ * acknowledged, and nothing else is until the next append has moved to a fresh, synced segment.
+ */
+class UpdateJournal implements Closeable {
+    record Entry(long seq, UUID id, String fullName, Integer age) {}
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final List<Path> sealed = new ArrayList<>();
+
+    private long segmentNo;
+    private FileChannel current;
+    private long writtenSeq;
+    private long durableSeq;
+    private boolean syncing;
+    // Set by a failed fsync (or a partial write that could not be cut off); cleared by recover()
+    private IOException failure;
+    // first seq -> last seq of records written but never made durable
+    private final NavigableMap<Long, Long> lost = new TreeMap<>();
+
+    UpdateJournal(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .sorted(Comparator.comparingLong(UpdateJournal::segmentNumber))
+                    .forEach(sealed::add);
+        }
+        segmentNo = sealed.isEmpty() ? 0 : segmentNumber(sealed.get(sealed.size() - 1));
+        openNextSegment();
+    }
+
+    // Entries left over from a previous run, oldest first
+    List<Entry> replay() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path segment : sealed) {
+            String content = Files.readString(segment, StandardCharsets.UTF_8);
+            // Anything after the last newline is a torn write: never fsynced, hence never acknowledged
+            int end = content.lastIndexOf('\n');
+            if (end < 0) continue;
+            for (String line : content.substring(0, end).split("\n")) {
+                Entry e = parse(line);
+                if (e != null) entries.add(e);
+            }
+        }
+        return entries;
+    }
+
+    void append(Entry e) throws IOException {
+        String name = Base64.getEncoder().encodeToString(e.fullName().getBytes(StandardCharsets.UTF_8));
+        String payload = e.seq() + " " + e.id() + " " + (e.age() == null ? "-" : e.age()) + " " + name;
+        String line = payload + " " + crc(payload) + "\n";
+        ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+
+        lock.lock();
+        try {
+            if (failure != null) recover();
+            long start = current.position();
+            try {
+                while (buf.hasRemaining()) current.write(buf);
+            } catch (IOException ex) {
+                // Cut the partial record off, or the next record is glued onto it and fails its CRC
+                try {
+                    current.truncate(start);
+                } catch (IOException te) {
+                    fail(te);
+                }
+                throw ex;
+            }
+            writtenSeq = Math.max(writtenSeq, e.seq());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void awaitDurable(long seq) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                // Checked on every wakeup: recover() advances durableSeq past records it gave up on
+                Map.Entry<Long, Long> lostRange = lost.floorEntry(seq);
+                if (lostRange != null && seq <= lostRange.getValue()) {
+                    throw new IOException("Write-behind journal fsync failed for this record");
+                }
+                if (durableSeq >= seq) return;
+                if (failure != null) {
+                    throw new IOException("Write-behind journal failed: " + failure.getMessage(), failure);
+                }
+                if (syncing) {
+                    synced.await();
+                    continue;
+                }
+                syncing = true;
+                long target = writtenSeq;
+                FileChannel channel = current;
+
+                // fsync without the lock, so the next group can keep appending meanwhile
+                lock.unlock();
+                IOException forceFailure = null;
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    forceFailure = e;
+                } finally {
+                    lock.lock();
+                }
+
+                syncing = false;
+                if (forceFailure == null) durableSeq = Math.max(durableSeq, target);
+                else fail(forceFailure);
+                synced.signalAll();
+                if (forceFailure != null) throw forceFailure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Seals the current segment and returns every sealed segment not yet handed out
+    List<Path> rotate() throws IOException {
+        lock.lock();
+        try {
+            while (syncing) synced.awaitUninterruptibly();
+            if (failure != null) recover();
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+            current.close();
+            durableSeq = writtenSeq;
+            synced.signalAll();
+
+            sealed.add(segmentPath(segmentNo));
+            openNextSegment();
+
+            List<Path> out = new ArrayList<>(sealed);
+            sealed.clear();
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void delete(List<Path> segments) {
+        for (Path p : segments) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                System.out.println(">>> Write-behind: cannot delete " + p + ": " + e.getMessage());
+            }
+        }
+        // A segment that comes back after a crash would replay already committed updates
+        try {
+            syncDirectory();
+        } catch (IOException e) {
+            System.out.println(">>> Write-behind: cannot sync " + dir + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            current.force(false);
+            current.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock. Whatever was not durable yet is lost; waiters for it get an error
+    private void fail(IOException e) {
+        failure = e;
+        if (writtenSeq > durableSeq) lost.put(durableSeq + 1, writtenSeq);
+        synced.signalAll();
+        System.out.println(">>> Write-behind: journal failed, not acknowledging until recovered: " + e.getMessage());
+    }
+
+    // Caller holds the lock. The suspect segment is sealed (its fsynced records are replayed or
+    // deleted like any other) and appends continue on a fresh segment that is synced first
+    private void recover() throws IOException {
+        while (syncing) synced.awaitUninterruptibly();
+        if (failure == null) return;
+        try {
+            current.close();
+        } catch (IOException ignored) {
+            // Already failed; the records that matter were fsynced before the failure
+        }
+        sealed.add(segmentPath(segmentNo));
+        openNextSegment();
+        current.force(false);
+        durableSeq = writtenSeq;
+        failure = null;
+        System.out.println(">>> Write-behind: journal recovered on " + segmentPath(segmentNo).getFileName());
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentNo++;
+        current = FileChannel.open(segmentPath(segmentNo),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // The new file's directory entry must be durable too, or an fsynced segment can vanish
+        syncDirectory();
+    }
+
+    private void syncDirectory() throws IOException {
+        // Windows cannot open a directory as a channel; NTFS journals its metadata anyway
+        if (System.getProperty("os.name", "").startsWith("Windows")) return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        }
+    }
+
+    private Path segmentPath(long n) {
+        return dir.resolve(PREFIX + n + SUFFIX);
+    }
+
+    private static long segmentNumber(Path p) {
+        String name = p.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static String crc(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static Entry parse(String line) {
+        int sep = line.lastIndexOf(' ');
+        if (sep < 0 || !crc(line.substring(0, sep)).equals(line.substring(sep + 1))) return null;
+
+        String[] parts = line.substring(0, sep).split(" ");
+        if (parts.length != 4) return null;
+        try {
+            return new Entry(
+                    Long.parseLong(parts[0]),
+                    UUID.fromString(parts[1]),
+                    new String(Base64.getDecoder().decode(parts[3]), StandardCharsets.UTF_8),
+                    parts[2].equals("-") ? null : Integer.valueOf(parts[2])
+            );
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package demo.jdbc.db;
 
+import demo.jdbc.db.profiling.QueryProfiler;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
@@ -11,6 +13,7 @@ public final class DB {
     private static final String url;
     private static final String username;
     private static final String password;
+    private static final QueryProfiler profiler;
 
     static {
         try (InputStream input = DB.class.getClassLoader().getResourceAsStream("db.properties")) {
@@ -19,6 +22,12 @@ public final class DB {
             url = props.getProperty("db.url");
             username = props.getProperty("db.username");
             password = props.getProperty("db.password");
+            profiler = new QueryProfiler(
+                    Boolean.parseBoolean(props.getProperty("db.profiler.enabled", "true")),
+                    Long.parseLong(props.getProperty("db.profiler.slow_ms", "200")),
+                    Boolean.parseBoolean(props.getProperty("db.profiler.explain", "true")),
+                    DB::getRawConnection
+            );
 
             Class.forName("org.postgresql.Driver");
         } catch (IOException e) {
@@ -31,10 +40,32 @@ public final class DB {
     private DB() {}
 
     public static Connection getConnection() {
+        return profiler.wrap(getRawConnection());
+    }
+
+    // Unprofiled connection, used by the profiler itself for EXPLAIN
+    public static Connection getRawConnection() {
         try {
             return DriverManager.getConnection(url, username, password);
         } catch (Exception e) {
             throw new RuntimeException("Không kết nối được DB: " + e.getMessage(), e);
         }
     }
+
+    // Real round-trip for /ready; never throws
+    public static boolean isReachable() {
+        try (Connection con = getRawConnection()) {
+            return con.isValid(2);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public static String getProperty(String key, String defaultValue) {
+        return props.getProperty(key, defaultValue);
+    }
+
+    public static QueryProfiler profiler() {
+        return profiler;
+    }
 }
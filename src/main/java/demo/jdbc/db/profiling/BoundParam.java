@@ -0,0 +1,34 @@
+package demo.jdbc.db.profiling;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A recorded {@code setXxx(index, ...)} call, replayed onto the EXPLAIN statement so the
+ * plan is captured with the same bind values as the slow execution.
+ */
+record BoundParam(Method setter, Object[] args) {
+
+    boolean isReplayable() {
+        for (Object arg : args) {
+            // Streams were already consumed by the original execution
+            if (arg instanceof InputStream || arg instanceof Reader) return false;
+        }
+        return true;
+    }
+
+    void applyTo(PreparedStatement ps) throws SQLException {
+        try {
+            setter.invoke(ps, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException sqlEx) throw sqlEx;
+            throw new SQLException("Cannot replay " + setter.getName(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new SQLException("Cannot replay " + setter.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package demo.jdbc.db.profiling;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+
+/**
+ * Hands out profiling proxies for every Statement created from the wrapped connection.
+ */
+class ProfilingConnectionHandler implements InvocationHandler {
+    private final QueryProfiler profiler;
+    private final Object target;
+
+    ProfilingConnectionHandler(QueryProfiler profiler, Object target) {
+        this.profiler = profiler;
+        this.target = target;
+    }
+
+    Object target() {
+        return target;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        String name = method.getName();
+        if (result instanceof Statement
+                && (name.equals("createStatement") || name.equals("prepareStatement") || name.equals("prepareCall"))) {
+            String sql = name.equals("createStatement") ? null : (String) args[0];
+            Class<?> type = method.getReturnType();
+            return Proxy.newProxyInstance(
+                    ProfilingConnectionHandler.class.getClassLoader(),
+                    new Class<?>[]{type},
+                    new ProfilingStatementHandler(profiler, result, sql)
+            );
+        }
+        return result;
+    }
+}
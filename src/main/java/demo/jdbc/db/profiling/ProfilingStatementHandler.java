@@ -0,0 +1,64 @@
+package demo.jdbc.db.profiling;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times every {@code execute*} call on a Statement / PreparedStatement and remembers the
+ * bind parameters of prepared statements for a possible EXPLAIN replay.
+ */
+class ProfilingStatementHandler implements InvocationHandler {
+    private final QueryProfiler profiler;
+    private final Object target;
+    private final String sql;
+    private final Map<Integer, BoundParam> params;
+
+    ProfilingStatementHandler(QueryProfiler profiler, Object target, String sql) {
+        this.profiler = profiler;
+        this.target = target;
+        this.sql = sql;
+        // Plain Statements carry their SQL in execute(sql) and have no parameters
+        this.params = sql != null ? new TreeMap<>() : null;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+
+        if (name.startsWith("execute")) {
+            boolean inline = args != null && args.length > 0 && args[0] instanceof String;
+            String executed = inline ? (String) args[0] : sql;
+            long start = System.nanoTime();
+            try {
+                return call(method, args);
+            } finally {
+                if (executed != null) {
+                    // Batches only keep the last row's bindings, so they are timed but not explained
+                    Map<Integer, BoundParam> bindings = name.equals("executeBatch") ? null
+                            : inline ? Map.of() : params;
+                    profiler.record(executed, System.nanoTime() - start, bindings);
+                }
+            }
+        }
+
+        if (params != null) {
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                params.put(index, new BoundParam(method, args.clone()));
+            } else if (name.equals("clearParameters")) {
+                params.clear();
+            }
+        }
+        return call(method, args);
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
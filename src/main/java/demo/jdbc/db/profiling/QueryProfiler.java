@@ -0,0 +1,192 @@
+package demo.jdbc.db.profiling;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Slow-query log shared by the JDBC and Hibernate stacks.
+ * <p>
+ * Connections passed through {@link #wrap(Connection)} time every statement, aggregate the
+ * timings per {@link SqlFingerprint} and, for statements above the slow threshold, capture a plan
+ * on a side connection in the background. Only plain reads are re-executed with
+ * {@code EXPLAIN (ANALYZE, BUFFERS)}; DML and locking reads get a plain {@code EXPLAIN}, so rows,
+ * locks and triggers are never touched. The EXPLAIN runs in a read-only transaction with short
+ * lock and statement timeouts and is always rolled back.
+ */
+public class QueryProfiler {
+    private static final int MAX_SLOW_SAMPLES = 100;
+    private static final long EXPLAIN_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(60);
+    // Keep one EXPLAIN from stalling the single worker behind the caller's locks
+    private static final String EXPLAIN_LOCK_TIMEOUT = "1s";
+    private static final String EXPLAIN_STATEMENT_TIMEOUT = "5s";
+    private static final Pattern LOCKING_CLAUSE =
+            Pattern.compile("\\bfor\\s+(?:no\\s+key\\s+update|update|key\\s+share|share)\\b");
+
+    private final boolean enabled;
+    private final long slowThresholdNanos;
+    private final boolean explainEnabled;
+    private final Supplier<Connection> sideConnection;
+
+    private final Map<String, QueryStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastExplainAt = new ConcurrentHashMap<>();
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private final ThreadPoolExecutor explainExecutor;
+
+    public QueryProfiler(boolean enabled, long slowThresholdMs, boolean explainEnabled,
+                         Supplier<Connection> sideConnection) {
+        this.enabled = enabled;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.explainEnabled = explainEnabled;
+        this.sideConnection = sideConnection;
+
+        // One daemon worker with a small bounded queue: under a storm of slow queries
+        // extra EXPLAIN requests are rejected (and reported) instead of piling up on the database.
+        this.explainExecutor = new ThreadPoolExecutor(
+                1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(32),
+                r -> {
+                    Thread t = new Thread(r, "slow-query-explain");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    public Connection wrap(Connection con) {
+        if (!enabled || Proxy.isProxyClass(con.getClass())
+                && Proxy.getInvocationHandler(con) instanceof ProfilingConnectionHandler) {
+            return con;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                QueryProfiler.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ProfilingConnectionHandler(this, con)
+        );
+    }
+
+    public static Connection unwrap(Connection con) {
+        if (Proxy.isProxyClass(con.getClass())
+                && Proxy.getInvocationHandler(con) instanceof ProfilingConnectionHandler handler) {
+            return (Connection) handler.target();
+        }
+        return con;
+    }
+
+    void record(String sql, long nanos, Map<Integer, BoundParam> params) {
+        String fingerprint = SqlFingerprint.of(sql);
+        boolean slow = nanos >= slowThresholdNanos;
+        stats.computeIfAbsent(fingerprint, f -> new QueryStats(f, sql)).record(nanos, slow);
+        if (!slow) return;
+
+        SlowQuery entry = new SlowQuery(fingerprint, sql, nanos / 1_000_000.0, Instant.now());
+        synchronized (slowQueries) {
+            if (slowQueries.size() >= MAX_SLOW_SAMPLES) slowQueries.removeLast();
+            slowQueries.addFirst(entry);
+        }
+        System.out.printf(">>> Slow query (%.1f ms): %s%n", entry.getDurationMs(), fingerprint);
+
+        if (explainEnabled && params != null && isExplainable(sql) && claimExplain(fingerprint)) {
+            // Copy now: the statement may be re-bound by its owner once we return
+            List<BoundParam> bound = new ArrayList<>(params.values());
+            if (bound.stream().allMatch(BoundParam::isReplayable)) {
+                try {
+                    explainExecutor.execute(() -> explain(entry, bound));
+                } catch (RejectedExecutionException e) {
+                    entry.setExplainError("skipped: explain queue full");
+                }
+            }
+        }
+    }
+
+    private boolean claimExplain(String fingerprint) {
+        long now = System.nanoTime();
+        Long previous = lastExplainAt.get(fingerprint);
+        if (previous != null && now - previous < EXPLAIN_COOLDOWN_NANOS) return false;
+        return previous == null
+                ? lastExplainAt.putIfAbsent(fingerprint, now) == null
+                : lastExplainAt.replace(fingerprint, previous, now);
+    }
+
+    private static boolean isExplainable(String sql) {
+        String head = sql.stripLeading().toLowerCase(Locale.ROOT);
+        return head.startsWith("select") || head.startsWith("insert") || head.startsWith("update")
+                || head.startsWith("delete") || head.startsWith("with") || head.startsWith("values");
+    }
+
+    // Re-executing is only safe for statements that neither write nor take row locks
+    static boolean isReadOnly(String sql) {
+        // The fingerprint has literals and comments stripped, so they can't fake a locking clause
+        String normalized = SqlFingerprint.of(sql);
+        return (normalized.startsWith("select") || normalized.startsWith("values"))
+                && !LOCKING_CLAUSE.matcher(normalized).find();
+    }
+
+    private void explain(SlowQuery entry, List<BoundParam> params) {
+        String explain = isReadOnly(entry.getSql()) ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ";
+        try (Connection con = sideConnection.get()) {
+            con.setAutoCommit(false);
+            con.setReadOnly(true);
+            try (Statement st = con.createStatement()) {
+                st.execute("SET LOCAL lock_timeout = '" + EXPLAIN_LOCK_TIMEOUT + "'");
+                st.execute("SET LOCAL statement_timeout = '" + EXPLAIN_STATEMENT_TIMEOUT + "'");
+            }
+            try (PreparedStatement ps = con.prepareStatement(explain + entry.getSql())) {
+                for (BoundParam p : params) p.applyTo(ps);
+
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) plan.append(rs.getString(1)).append('\n');
+                }
+                entry.setPlan(plan.toString());
+            } finally {
+                con.rollback();
+            }
+        } catch (Exception e) {
+            entry.setExplainError(e.getMessage());
+        }
+    }
+
+    public List<QueryStats.Snapshot> stats() {
+        return stats.values().stream()
+                .map(QueryStats::snapshot)
+                .sorted(Comparator.comparingDouble(QueryStats.Snapshot::totalMs).reversed())
+                .toList();
+    }
+
+    public List<SlowQuery> slowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    public void reset() {
+        stats.clear();
+        lastExplainAt.clear();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    public long slowThresholdMs() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+}
@@ -0,0 +1,55 @@
+package demo.jdbc.db.profiling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running aggregates for one SQL fingerprint. Updated lock-free from every statement execution.
+ */
+public class QueryStats {
+    private final String fingerprint;
+    private final String sampleSql;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    QueryStats(String fingerprint, String sampleSql) {
+        this.fingerprint = fingerprint;
+        this.sampleSql = sampleSql;
+    }
+
+    void record(long nanos, boolean slow) {
+        calls.increment();
+        totalNanos.add(nanos);
+        if (slow) slowCalls.increment();
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Snapshot snapshot() {
+        long n = calls.sum();
+        long total = totalNanos.sum();
+        return new Snapshot(
+                fingerprint,
+                n,
+                toMillis(total),
+                n == 0 ? 0 : toMillis(total / n),
+                toMillis(maxNanos.get()),
+                slowCalls.sum(),
+                sampleSql
+        );
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public record Snapshot(
+            String fingerprint,
+            long calls,
+            double totalMs,
+            double meanMs,
+            double maxMs,
+            long slowCalls,
+            String sampleSql) {}
+}
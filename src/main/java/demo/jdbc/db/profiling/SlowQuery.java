@@ -0,0 +1,55 @@
+package demo.jdbc.db.profiling;
+
+import java.time.Instant;
+
+/**
+ * One execution that exceeded the slow threshold. The plan is filled in later by the
+ * background EXPLAIN task, so it stays {@code null} until that finishes (or is skipped).
+ */
+public class SlowQuery {
+    private final String fingerprint;
+    private final String sql;
+    private final double durationMs;
+    private final Instant executedAt;
+    private volatile String plan;
+    private volatile String explainError;
+
+    SlowQuery(String fingerprint, String sql, double durationMs, Instant executedAt) {
+        this.fingerprint = fingerprint;
+        this.sql = sql;
+        this.durationMs = durationMs;
+        this.executedAt = executedAt;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public double getDurationMs() {
+        return durationMs;
+    }
+
+    public Instant getExecutedAt() {
+        return executedAt;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+
+    public String getExplainError() {
+        return explainError;
+    }
+
+    void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    void setExplainError(String explainError) {
+        this.explainError = explainError;
+    }
+}
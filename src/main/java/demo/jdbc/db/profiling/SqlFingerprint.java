@@ -0,0 +1,50 @@
+package demo.jdbc.db.profiling;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes SQL text into a fingerprint: literals and bind markers become {@code ?},
+ * IN-lists and repeated VALUES tuples collapse to a single marker and whitespace/comments are
+ * removed, so that statements differing only in their values (or batch size) are aggregated together.
+ */
+public final class SqlFingerprint {
+    private static final int MAX_CACHED = 2048;
+
+    private static final Pattern BLOCK_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern LINE_COMMENT = Pattern.compile("--[^\\n]*");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern POSITIONAL_PARAM = Pattern.compile("\\$\\d+");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern REPEATED_TUPLES = Pattern.compile("\\(\\?\\.\\.\\.\\)(?:\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // SQL strings are almost always constants, so the normalized form is cached per text
+    private static final Map<String, String> CACHE = new ConcurrentHashMap<>();
+
+    private SqlFingerprint() {}
+
+    public static String of(String sql) {
+        String cached = CACHE.get(sql);
+        if (cached != null) return cached;
+
+        String fingerprint = normalize(sql);
+        if (CACHE.size() < MAX_CACHED) CACHE.put(sql, fingerprint);
+        return fingerprint;
+    }
+
+    static String normalize(String sql) {
+        String s = BLOCK_COMMENT.matcher(sql).replaceAll(" ");
+        s = LINE_COMMENT.matcher(s).replaceAll(" ");
+        s = STRING_LITERAL.matcher(s).replaceAll("?");
+        s = POSITIONAL_PARAM.matcher(s).replaceAll("?");
+        s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+        s = IN_LIST.matcher(s).replaceAll("(?...)");
+        s = REPEATED_TUPLES.matcher(s).replaceAll("(?...)");
+        s = WHITESPACE.matcher(s).replaceAll(" ").trim();
+        return s.toLowerCase(Locale.ROOT);
+    }
+}
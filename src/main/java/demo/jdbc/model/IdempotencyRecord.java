@@ -0,0 +1,9 @@
+package demo.jdbc.model;
+
+// status == null while the first request is still being processed
+public record IdempotencyRecord(
+        String key,
+        String requestHash,
+        Integer status,
+        String location,
+        String body) {}
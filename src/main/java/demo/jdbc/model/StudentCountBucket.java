@@ -0,0 +1,9 @@
+package demo.jdbc.model;
+
+import java.time.LocalDate;
+
+// Number of students with a given age who signed up on a given (UTC) day
+public record StudentCountBucket(
+        Integer age,
+        LocalDate day,
+        long count) {}
@@ -0,0 +1,8 @@
+package demo.jdbc.model;
+
+import java.util.UUID;
+
+public record StudentUpdate(
+        UUID id,
+        String fullName,
+        Integer age) {}
@@ -3,12 +3,36 @@ package demo.jdbc.orm;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class HibernateUtil {
-    private static final SessionFactory sessionFactory = buildSessionFactory();
+    private static final long RETRY_MIN_MS = 1_000;
+    private static final long RETRY_MAX_MS = 60_000;
+
+    // The current build attempt; a failed one is replaced when its retry starts
+    private static volatile CompletableFuture<SessionFactory> sessionFactory = new CompletableFuture<>();
+    private static volatile long nextRetryAt;
+    private static final AtomicBoolean started = new AtomicBoolean();
+    private static final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "orm-bootstrap-retry");
+        t.setDaemon(true);
+        return t;
+    });
 
     private static SessionFactory buildSessionFactory() {
         try {
             Configuration config = new Configuration().configure();
+            // -Dorm.validateSchema=false: production nodes trust the migrations and skip
+            // the metadata round-trips that hbm2ddl validate does on every start
+            if (!Boolean.parseBoolean(System.getProperty("orm.validateSchema", "true"))) {
+                config.setProperty("hibernate.hbm2ddl.auto", "none");
+            }
             System.out.println(">>> Starting... building SessionFactory");
             return config.buildSessionFactory();
         } catch (Exception e) {
@@ -18,12 +42,83 @@ public class HibernateUtil {
 
     private HibernateUtil() {}
 
+    // Build the SessionFactory on the calling thread (no-op if already started)
+    public static void init() {
+        start(Runnable::run);
+    }
+
+    // Build the SessionFactory on a background thread and return immediately
+    public static void initAsync() {
+        start(task -> {
+            Thread t = new Thread(task, "orm-bootstrap");
+            t.setDaemon(true);
+            t.start();
+        });
+    }
+
+    private static void start(Executor executor) {
+        if (!started.compareAndSet(false, true)) return;
+        CompletableFuture<SessionFactory> first = sessionFactory;
+        executor.execute(() -> build(first, 0));
+    }
+
+    // One build attempt; a failure (e.g. DB down at boot) schedules the next with exponential backoff
+    private static void build(CompletableFuture<SessionFactory> attempt, int failures) {
+        try {
+            attempt.complete(buildSessionFactory());
+        } catch (Throwable e) {
+            long delay = Math.min(RETRY_MAX_MS, RETRY_MIN_MS << Math.min(failures, 6));
+            System.out.println(">>> Failed to build SessionFactory, retrying in " + delay + " ms: " + e);
+            nextRetryAt = System.currentTimeMillis() + delay;
+            attempt.completeExceptionally(e);
+            retries.schedule(() -> {
+                CompletableFuture<SessionFactory> next = new CompletableFuture<>();
+                sessionFactory = next;
+                build(next, failures + 1);
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Blocks until the current build attempt finishes; starts the build if nobody did yet.
+    // Throws the failure if that attempt failed (a retry is already scheduled).
     public static SessionFactory getSessionFactory() {
-        return sessionFactory;
+        init();
+        try {
+            return sessionFactory.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Failed to build SessionFactory", e.getCause());
+        }
+    }
+
+    public static boolean isReady() {
+        CompletableFuture<SessionFactory> sf = sessionFactory;
+        return sf.isDone() && !sf.isCompletedExceptionally();
+    }
+
+    // "not started" | "starting" | "ready" | "failed" (last attempt failed, retry scheduled)
+    public static String status() {
+        CompletableFuture<SessionFactory> sf = sessionFactory;
+        if (!started.get()) return "not started";
+        if (!sf.isDone()) return "starting";
+        return sf.isCompletedExceptionally() ? "failed" : "ready";
+    }
+
+    // Seconds until the SessionFactory may be ready: the next retry after a failure, else 1
+    public static long retryAfterSeconds() {
+        if (!"failed".equals(status())) return 1;
+        long ms = nextRetryAt - System.currentTimeMillis();
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(ms + 999));
+    }
+
+    // Waits for the current build attempt to finish either way, without rethrowing its failure
+    public static void awaitStartup() {
+        sessionFactory.handle((sf, e) -> null).join();
     }
 
     public static void closeSession() {
-        sessionFactory.close();
+        if (!isReady()) return;
+        sessionFactory.join().close();
         System.out.println(">>> Shutting down... closed SessionFactory");
     }
 }
@@ -0,0 +1,74 @@
+package demo.jdbc.orm;
+
+import demo.jdbc.db.DB;
+import demo.jdbc.db.profiling.QueryProfiler;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.jdbc.connections.spi.DatabaseConnectionInfo;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.ServiceRegistryAwareService;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.hibernate.service.spi.Stoppable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Hibernate's built-in pooled provider, with every handed-out connection routed through the
+ * same {@link QueryProfiler} as the plain JDBC stack. Implements only the SPI and delegates,
+ * so it does not depend on the pool's internals.
+ */
+public class ProfilingConnectionProvider
+        implements ConnectionProvider, Configurable, ServiceRegistryAwareService, Stoppable {
+    private static final long serialVersionUID = 1L;
+
+    private final DriverManagerConnectionProviderImpl pool = new DriverManagerConnectionProviderImpl();
+
+    @Override
+    public void injectServices(ServiceRegistryImplementor serviceRegistry) {
+        pool.injectServices(serviceRegistry);
+    }
+
+    @Override
+    public void configure(Map<String, Object> configurationValues) {
+        pool.configure(configurationValues);
+    }
+
+    @Override
+    public void stop() {
+        pool.stop();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return DB.profiler().wrap(pool.getConnection());
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        // The pool must get back the physical connection, not our proxy
+        pool.closeConnection(QueryProfiler.unwrap(conn));
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return pool.supportsAggressiveRelease();
+    }
+
+    @Override
+    public DatabaseConnectionInfo getDatabaseConnectionInfo(Dialect dialect) {
+        return pool.getDatabaseConnectionInfo(dialect);
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isInstance(this) || pool.isUnwrappableAs(unwrapType);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> unwrapType) {
+        return unwrapType.isInstance(this) ? unwrapType.cast(this) : pool.unwrap(unwrapType);
+    }
+}
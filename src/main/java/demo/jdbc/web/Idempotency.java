@@ -0,0 +1,279 @@
+package demo.jdbc.web;
+
+import demo.jdbc.dao.IdempotencyDao;
+import demo.jdbc.model.IdempotencyRecord;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@code Idempotency-Key} support for non-idempotent routes.
+ * <p>
+ * The first request with a given key runs the route; its response (anything below 500) is kept
+ * in a bounded, time-expiring in-memory map and replayed for retries without touching the route.
+ * Duplicates that arrive while the first one is still running wait for its result. With a
+ * {@link IdempotencyDao} the key is also claimed in Postgres, so retries landing on another node
+ * see the same result. Once the route has answered, that answer is kept even if recording it in
+ * Postgres fails; the write is then retried in the background.
+ */
+public class Idempotency {
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long POLL_MS = 100;
+    private static final long COMPLETE_RETRY_MS = 500;
+    private static final long COMPLETE_RETRY_MAX_MS = 30_000;
+
+    private record Stored(int status, String location, String body) {}
+
+    private static final class Entry {
+        final String requestHash;
+        final long expiresAt;
+        final CompletableFuture<Stored> result = new CompletableFuture<>();
+
+        Entry(String requestHash, long expiresAt) {
+            this.requestHash = requestHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Thrown to the owner's waiters when its response must not be reused; they start over
+    private static final class NotStored extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotStored() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final IdempotencyDao dao;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final long waitMs;
+    // Cleanup and completion retries; null without a dao
+    private final ScheduledExecutorService background;
+    // Insertion order == expiry order, so expired entries are always at the head
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    // dao == null: in-memory only (single node)
+    public Idempotency(IdempotencyDao dao, long ttlMs, int maxEntries, long waitMs) {
+        this.dao = dao;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.waitMs = waitMs;
+
+        if (dao == null) {
+            this.background = null;
+        } else {
+            this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "idempotency-background");
+                t.setDaemon(true);
+                return t;
+            });
+            // Expired rows are overwritten on claim anyway; this just keeps the table small
+            long ttlSeconds = TimeUnit.MILLISECONDS.toSeconds(ttlMs);
+            background.scheduleWithFixedDelay(() -> {
+                try {
+                    dao.deleteExpired(ttlSeconds);
+                } catch (RuntimeException e) {
+                    System.out.println(">>> Idempotency cleanup failed: " + e.getMessage());
+                }
+            }, 1, 60, TimeUnit.MINUTES);
+        }
+    }
+
+    public Route wrap(Route route) {
+        return (req, res) -> {
+            String key = req.headers(HEADER);
+            if (key == null || key.isBlank()) return route.handle(req, res);
+            if (key.length() > MAX_KEY_LENGTH) {
+                res.status(400);
+                return JsonUtil.toJson(Map.of("error", HEADER + " is too long"));
+            }
+
+            String scoped = req.requestMethod() + " " + req.uri() + " " + key;
+            String hash = sha256(req.body());
+
+            while (true) {
+                Entry entry;
+                boolean owner = false;
+                synchronized (entries) {
+                    long now = System.currentTimeMillis();
+                    purgeExpired(now);
+                    entry = entries.get(scoped);
+                    if (entry == null) {
+                        entry = new Entry(hash, now + ttlMs);
+                        entries.put(scoped, entry);
+                        owner = true;
+                        if (entries.size() > maxEntries) {
+                            Iterator<Entry> eldest = entries.values().iterator();
+                            eldest.next();
+                            eldest.remove();
+                        }
+                    }
+                }
+
+                if (!entry.requestHash.equals(hash)) return mismatch(res);
+                if (owner) return execute(scoped, entry, route, req, res);
+
+                try {
+                    return replay(res, entry.result.get(waitMs, TimeUnit.MILLISECONDS));
+                } catch (ExecutionException e) {
+                    // The first request failed or its answer is not reusable: run again
+                } catch (TimeoutException e) {
+                    return inProgress(res);
+                }
+            }
+        };
+    }
+
+    private Object execute(String scoped, Entry entry, Route route, Request req, Response res) throws Exception {
+        boolean stored = false;
+        try {
+            Optional<Stored> result = dao == null
+                    ? Optional.of(run(route, req, res))
+                    : executeShared(scoped, entry.requestHash, route, req, res);
+            if (result.isEmpty()) return res.body();
+
+            Stored s = result.get();
+            if (s.status() < 500) {
+                entry.result.complete(s);
+                stored = true;
+            }
+            return s.body();
+        } finally {
+            if (!stored) {
+                synchronized (entries) {
+                    entries.remove(scoped, entry);
+                }
+                entry.result.completeExceptionally(new NotStored());
+            }
+        }
+    }
+
+    // Empty when this node answered with a non-reusable response (mismatch / still in progress)
+    private Optional<Stored> executeShared(String scoped, String hash, Route route, Request req, Response res)
+            throws Exception {
+        long deadline = System.currentTimeMillis() + waitMs;
+        long staleSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(2 * waitMs));
+        long ttlSeconds = TimeUnit.MILLISECONDS.toSeconds(ttlMs);
+
+        while (true) {
+            if (dao.claim(scoped, hash, ttlSeconds, staleSeconds)) {
+                Stored s;
+                try {
+                    s = run(route, req, res);
+                } catch (Exception e) {
+                    releaseQuietly(scoped);
+                    throw e;
+                }
+                // The route has run: from here on its answer is returned (and cached) whatever the DB does
+                if (s.status() < 500) {
+                    completeShared(scoped, s, 0, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(staleSeconds));
+                } else {
+                    releaseQuietly(scoped);
+                }
+                return Optional.of(s);
+            }
+
+            Optional<IdempotencyRecord> row = dao.findByKey(scoped);
+            if (row.isEmpty()) continue; // released in the meantime, try to claim it
+
+            IdempotencyRecord r = row.get();
+            if (!r.requestHash().equals(hash)) {
+                res.body(mismatch(res));
+                return Optional.empty();
+            }
+            if (r.status() != null) {
+                Stored s = new Stored(r.status(), r.location(), r.body());
+                replay(res, s);
+                return Optional.of(s);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                res.body(inProgress(res));
+                return Optional.empty();
+            }
+            Thread.sleep(POLL_MS);
+        }
+    }
+
+    // Retried with backoff until it sticks, or until other nodes may take the claim over as stale
+    private void completeShared(String scoped, Stored s, int attempt, long giveUpAt) {
+        try {
+            dao.complete(scoped, s.status(), s.location(), s.body());
+        } catch (RuntimeException e) {
+            long delay = Math.min(COMPLETE_RETRY_MAX_MS, COMPLETE_RETRY_MS << Math.min(attempt, 10));
+            if (System.currentTimeMillis() + delay > giveUpAt) {
+                System.out.println(">>> Idempotency: giving up storing result for " + scoped + ": " + e.getMessage());
+                return;
+            }
+            System.out.println(">>> Idempotency: storing result failed, retrying in " + delay + " ms: " + e.getMessage());
+            background.schedule(() -> completeShared(scoped, s, attempt + 1, giveUpAt), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Never masks the route's own outcome; a claim left behind turns stale and is taken over
+    private void releaseQuietly(String scoped) {
+        try {
+            dao.release(scoped);
+        } catch (RuntimeException e) {
+            System.out.println(">>> Idempotency: releasing " + scoped + " failed: " + e.getMessage());
+        }
+    }
+
+    private static Stored run(Route route, Request req, Response res) throws Exception {
+        Object body = route.handle(req, res);
+        return new Stored(res.raw().getStatus(), res.raw().getHeader("Location"), body == null ? "" : body.toString());
+    }
+
+    private static String replay(Response res, Stored s) {
+        res.status(s.status());
+        if (s.location() != null) res.header("Location", s.location());
+        res.header("Idempotent-Replayed", "true");
+        return s.body();
+    }
+
+    private static String mismatch(Response res) {
+        res.status(422);
+        return JsonUtil.toJson(Map.of("error", HEADER + " was already used with a different request"));
+    }
+
+    private static String inProgress(Response res) {
+        res.status(409);
+        res.header("Retry-After", "1");
+        return JsonUtil.toJson(Map.of("error", "A request with this " + HEADER + " is still in progress"));
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.expiresAt > now) break;
+            it.remove();
+        }
+    }
+
+    private static String sha256(String body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((body == null ? "" : body).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS app.idempotency_keys(
+    key VARCHAR(400) PRIMARY KEY, -- "<method> <path> <Idempotency-Key>"
+    request_hash CHAR(64) NOT NULL,
+    status INT,                   -- NULL while the first request is in flight
+    location TEXT,
+    body TEXT,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_created_at ON app.idempotency_keys(created_at);
@@ -0,0 +1,83 @@
+package demo.jdbc.dao;
+
+import demo.jdbc.model.StudentCountBucket;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudentStatsTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 1);
+    private static final Instant AT = Instant.parse("2024-01-01T10:00:00Z");
+    // xmin 100, xmax 110, 105 still in progress: sees < 100 and 100..109 except 105
+    private static final String SNAPSHOT = "100:110:105";
+
+    @Test
+    void rebuildsFromScan() {
+        StudentStats stats = new StudentStats();
+
+        assertTrue(stats.reconcile(() -> new StudentStats.Scan(SNAPSHOT, List.of(
+                new StudentCountBucket(20, DAY, 2),
+                new StudentCountBucket(null, DAY, 1)))));
+
+        StudentStats.Snapshot s = stats.snapshot();
+        assertTrue(stats.isReady());
+        assertEquals(3, s.count());
+        assertEquals(1, s.unknownAge());
+        assertEquals(Map.of(20, 2L), s.ageHistogram());
+        assertEquals(Map.of("2024-01-01", 3L), s.signupsPerDay());
+    }
+
+    @Test
+    void writesDuringScanAreAppliedOnlyIfTheScanCouldNotSeeThem() {
+        StudentStats stats = new StudentStats();
+
+        assertTrue(stats.reconcile(() -> {
+            // Committed before the snapshot: already in the buckets below
+            stats.inserted(99, 20, AT);
+            stats.inserted(107, 20, AT);
+            // In progress when the snapshot was taken, or started after it: not in the buckets
+            stats.inserted(105, 21, AT);
+            stats.updated(112, 20, 22);
+            stats.deleted(115, 30, AT);
+            return new StudentStats.Scan(SNAPSHOT, List.of(
+                    new StudentCountBucket(20, DAY, 4),
+                    new StudentCountBucket(30, DAY, 1)));
+        }));
+
+        StudentStats.Snapshot s = stats.snapshot();
+        assertEquals(5, s.count());
+        assertEquals(Map.of(20, 3L, 21, 1L, 22, 1L), s.ageHistogram());
+    }
+
+    @Test
+    void lateReportOfAWriteTheScanAlreadyCountedIsIgnored() {
+        StudentStats stats = new StudentStats();
+        stats.reconcile(() -> new StudentStats.Scan(SNAPSHOT, List.of(new StudentCountBucket(20, DAY, 1))));
+
+        // Committed before the snapshot, but the writer thread reports only after the swap
+        stats.inserted(108, 20, AT);
+        // A genuinely new write
+        stats.inserted(120, 20, AT);
+
+        assertEquals(2, stats.snapshot().count());
+    }
+
+    @Test
+    void failedScanLeavesAggregatesAndAllowsRetry() {
+        StudentStats stats = new StudentStats();
+        stats.reconcile(() -> new StudentStats.Scan(SNAPSHOT, List.of(new StudentCountBucket(20, DAY, 1))));
+
+        assertThrows(RuntimeException.class, () -> stats.reconcile(() -> {
+            throw new RuntimeException("DB error");
+        }));
+        assertEquals(1, stats.snapshot().count());
+
+        assertTrue(stats.reconcile(() -> new StudentStats.Scan("200:200:", List.of(new StudentCountBucket(20, DAY, 5)))));
+        assertEquals(5, stats.snapshot().count());
+    }
+}
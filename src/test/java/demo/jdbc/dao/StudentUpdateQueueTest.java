@@ -0,0 +1,162 @@
+package demo.jdbc.dao;
+
+import demo.jdbc.model.StudentUpdate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudentUpdateQueueTest {
+    // Long enough that nothing flushes unless a test asks for it
+    private static final long WINDOW_MS = 60_000;
+    private static final long FLUSH_WAIT_MS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    // Records every batch; ids listed in missing are reported as not matching a row
+    private static class RecordingDao extends StudentDao {
+        final List<List<StudentUpdate>> batches = new CopyOnWriteArrayList<>();
+        final Set<UUID> missing = new HashSet<>();
+
+        RecordingDao() {
+            super(new StudentStats());
+        }
+
+        @Override
+        public Set<UUID> updateAll(List<StudentUpdate> updates, int chunkSize) {
+            batches.add(List.copyOf(updates));
+            Set<UUID> updated = new HashSet<>();
+            for (StudentUpdate u : updates) {
+                if (!missing.contains(u.id())) updated.add(u.id());
+            }
+            return updated;
+        }
+    }
+
+    private static class UnreachableDao extends StudentDao {
+        UnreachableDao() {
+            super(new StudentStats());
+        }
+
+        @Override
+        public Set<UUID> updateAll(List<StudentUpdate> updates, int chunkSize) {
+            throw new RuntimeException("DB error", new SQLException("connection refused", "08001"));
+        }
+    }
+
+    @Test
+    void coalescesWritesPerIdLastWriteWins() {
+        RecordingDao dao = new RecordingDao();
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(dao, dir, WINDOW_MS, 100, 500)) {
+            queue.enqueue(a, "A1", 20);
+            queue.enqueue(b, "B1", 30);
+            queue.enqueue(a, "A2", 21);
+            queue.enqueue(a, "A3", 22);
+            queue.awaitFlushed(a, FLUSH_WAIT_MS);
+        }
+
+        assertEquals(1, dao.batches.size());
+        assertEquals(List.of(new StudentUpdate(a, "A3", 22), new StudentUpdate(b, "B1", 30)), dao.batches.get(0));
+    }
+
+    @Test
+    void ticketGoesFromPendingToCommitted() {
+        RecordingDao dao = new RecordingDao();
+        UUID id = UUID.randomUUID();
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(dao, dir, WINDOW_MS, 100, 500)) {
+            long first = queue.enqueue(id, "First", 20);
+            long second = queue.enqueue(id, "Second", 21);
+            assertEquals("pending", queue.status(first).status());
+            assertEquals("pending", queue.status(second).status());
+
+            queue.awaitFlushed(id, FLUSH_WAIT_MS);
+
+            // The superseded ticket is committed through the write that replaced it
+            assertEquals("committed", queue.status(first).status());
+            assertEquals("committed", queue.status(second).status());
+        }
+    }
+
+    @Test
+    void unknownTicketsHaveNoStatus() {
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(new RecordingDao(), dir, WINDOW_MS, 100, 500)) {
+            long ticket = queue.enqueue(UUID.randomUUID(), "Name", 20);
+
+            assertNull(queue.status(1));
+            assertNull(queue.status(ticket - 1));
+            assertNull(queue.status(ticket + 1));
+        }
+    }
+
+    @Test
+    void missingRowIsReportedAsNotFound() {
+        RecordingDao dao = new RecordingDao();
+        UUID id = UUID.randomUUID();
+        dao.missing.add(id);
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(dao, dir, WINDOW_MS, 100, 500)) {
+            long ticket = queue.enqueue(id, "Ghost", 20);
+            queue.awaitFlushed(id, FLUSH_WAIT_MS);
+
+            assertEquals("not_found", queue.status(ticket).status());
+        }
+    }
+
+    @Test
+    void rejectsNewIdsWhenFull() {
+        UUID a = UUID.randomUUID();
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(new RecordingDao(), dir, WINDOW_MS, 1, 500)) {
+            queue.enqueue(a, "A1", 20);
+            // Same id still coalesces into the existing slot
+            queue.enqueue(a, "A2", 21);
+            assertThrows(IllegalStateException.class, () -> queue.enqueue(UUID.randomUUID(), "B", 30));
+        }
+    }
+
+    @Test
+    void awaitFlushedGivesUpWhileDbIsDown() {
+        UUID id = UUID.randomUUID();
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(new UnreachableDao(), dir, WINDOW_MS, 100, 500)) {
+            queue.enqueue(id, "Queued", 25);
+
+            assertThrows(IllegalStateException.class, () -> queue.awaitFlushed(id, 200));
+            assertEquals("pending", queue.status(queue.enqueue(id, "Still accepted", 26)).status());
+        }
+    }
+
+    @Test
+    void acknowledgedUpdatesSurviveRestartWhileDbIsDown() {
+        UUID id = UUID.randomUUID();
+        long ticket;
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(new UnreachableDao(), dir, WINDOW_MS, 100, 500)) {
+            ticket = queue.enqueue(id, "Kept", 25);
+        }
+
+        RecordingDao dao = new RecordingDao();
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(dao, dir, WINDOW_MS, 100, 500)) {
+            assertEquals("pending", queue.status(ticket).status());
+
+            queue.awaitFlushed(id, FLUSH_WAIT_MS);
+
+            assertEquals("committed", queue.status(ticket).status());
+            assertEquals(List.of(List.of(new StudentUpdate(id, "Kept", 25))), dao.batches);
+        }
+
+        // Committed segments are gone: a third start has nothing to replay
+        RecordingDao idle = new RecordingDao();
+        try (StudentUpdateQueue queue = new StudentUpdateQueue(idle, dir, WINDOW_MS, 100, 500)) {
+            assertNull(queue.status(ticket));
+        }
+        assertTrue(idle.batches.isEmpty());
+    }
+}
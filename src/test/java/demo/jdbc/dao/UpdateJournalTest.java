@@ -0,0 +1,110 @@
+package demo.jdbc.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysEntriesLeftByPreviousRunInOrder() throws Exception {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            journal.append(new UpdateJournal.Entry(1, a, "Nguyễn Văn A", 20));
+            journal.append(new UpdateJournal.Entry(2, b, "name with spaces", null));
+            journal.awaitDurable(2);
+        }
+
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            assertEquals(List.of(
+                    new UpdateJournal.Entry(1, a, "Nguyễn Văn A", 20),
+                    new UpdateJournal.Entry(2, b, "name with spaces", null)
+            ), journal.replay());
+        }
+    }
+
+    @Test
+    void skipsTornTail() throws Exception {
+        UUID id = UUID.randomUUID();
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            journal.append(new UpdateJournal.Entry(1, id, "Complete", 20));
+            journal.append(new UpdateJournal.Entry(2, id, "ABCDEFGH", 21));
+            journal.awaitDurable(2);
+        }
+        Path segment = onlySegment();
+        String content = Files.readString(segment, StandardCharsets.UTF_8);
+        String first = content.substring(0, content.indexOf('\n') + 1);
+        String second = content.substring(first.length());
+
+        // Cut inside the base64 name: still decodes, must be rejected
+        int cut = second.indexOf(" ", second.indexOf(" ", second.indexOf(" ") + 1) + 1) + 4;
+        Files.writeString(segment, first + second.substring(0, cut), StandardCharsets.UTF_8);
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            assertEquals(List.of(new UpdateJournal.Entry(1, id, "Complete", 20)), journal.replay());
+        }
+    }
+
+    @Test
+    void skipsNewlineTerminatedRecordWithBadChecksum() throws Exception {
+        UUID id = UUID.randomUUID();
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            journal.append(new UpdateJournal.Entry(1, id, "Complete", 20));
+            journal.awaitDurable(1);
+        }
+        Path segment = onlySegment();
+        String line = Files.readString(segment, StandardCharsets.UTF_8);
+        Files.writeString(segment, line.replace(" 20 ", " 99 "), StandardCharsets.UTF_8);
+
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            assertTrue(journal.replay().isEmpty());
+        }
+    }
+
+    @Test
+    void deletedSegmentsAreNotReplayed() throws Exception {
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            journal.append(new UpdateJournal.Entry(1, UUID.randomUUID(), "Flushed", 20));
+            journal.awaitDurable(1);
+            journal.delete(journal.rotate());
+        }
+
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            assertTrue(journal.replay().isEmpty());
+        }
+    }
+
+    @Test
+    void appendsAfterRotationGoToNewSegment() throws Exception {
+        UUID id = UUID.randomUUID();
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            journal.append(new UpdateJournal.Entry(1, id, "Old", 20));
+            List<Path> sealed = journal.rotate();
+            journal.append(new UpdateJournal.Entry(2, id, "New", 21));
+            journal.awaitDurable(2);
+            journal.delete(sealed);
+        }
+
+        try (UpdateJournal journal = new UpdateJournal(dir)) {
+            assertEquals(List.of(new UpdateJournal.Entry(2, id, "New", 21)), journal.replay());
+        }
+    }
+
+    private Path onlySegment() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> nonEmpty = files.filter(p -> p.toFile().length() > 0).toList();
+            assertEquals(1, nonEmpty.size());
+            return nonEmpty.get(0);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package demo.jdbc.db.profiling;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryProfilerTest {
+    @Test
+    void onlyPlainReadsAreReExecutedByExplainAnalyze() {
+        assertTrue(QueryProfiler.isReadOnly("SELECT * FROM app.students WHERE id = ?"));
+        assertTrue(QueryProfiler.isReadOnly("  values (1)"));
+        assertTrue(QueryProfiler.isReadOnly("SELECT id FROM app.students WHERE full_name = 'for update'"));
+
+        assertFalse(QueryProfiler.isReadOnly("INSERT INTO app.students(full_name, email, age) VALUES (?, ?, ?)"));
+        assertFalse(QueryProfiler.isReadOnly("UPDATE app.students SET age = ? WHERE id = ?"));
+        assertFalse(QueryProfiler.isReadOnly("DELETE FROM app.students WHERE id = ?"));
+        assertFalse(QueryProfiler.isReadOnly("WITH d AS (DELETE FROM app.students RETURNING id) SELECT count(*) FROM d"));
+        assertFalse(QueryProfiler.isReadOnly("SELECT id, age FROM app.students WHERE id = ? FOR UPDATE"));
+        assertFalse(QueryProfiler.isReadOnly("select * from app.students for no key update"));
+        assertFalse(QueryProfiler.isReadOnly("select * from app.students\nfor share"));
+    }
+}
@@ -0,0 +1,27 @@
+package demo.jdbc.db.profiling;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlFingerprintTest {
+    @Test
+    void literalsAndCommentsAreNormalized() {
+        assertEquals("select * from app.students where email = ? and age > ?",
+                SqlFingerprint.normalize("SELECT *  FROM app.students -- by email\nWHERE email = 'a@b.c' AND age > 18"));
+    }
+
+    @Test
+    void inListsOfAnySizeShareAFingerprint() {
+        assertEquals(SqlFingerprint.normalize("SELECT * FROM t WHERE id IN (?)"),
+                SqlFingerprint.normalize("SELECT * FROM t WHERE id IN (?, ?, ?)"));
+    }
+
+    @Test
+    void multiRowValuesOfAnySizeShareAFingerprint() {
+        String one = SqlFingerprint.normalize("INSERT INTO t(a, b) VALUES (?, ?)");
+        assertEquals(one, SqlFingerprint.normalize("INSERT INTO t(a, b) VALUES (?, ?), (?, ?), (?, ?)"));
+        assertEquals(one, SqlFingerprint.normalize("INSERT INTO t(a, b) VALUES ('x', 1),\n ('y', 2)"));
+        assertEquals("insert into t(a, b) values (?...)", one);
+    }
+}